@@ -0,0 +1,196 @@
+package com.ectech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Appends to a file through an AsynchronousFileChannel with up to queueDepth positional writes in flight.
+ * Callers acquire() a buffer, fill it and submit() it. The buffer goes back to the free list from the completion
+ * callback, so acquire() blocks once queueDepth writes are outstanding and that is the only back-pressure.
+ *
+ * Per-write latency (submit to final completion, partial writes included) is kept in a log2 microsecond histogram
+ * so queue depth can be tuned against what the device reports, e.g. compare depth 1, 4, 16, 64 on NVMe.
+ */
+public class AsyncFileSink implements ByteSink
+{
+    static final int LATENCY_BUCKETS = 32;
+    protected AsynchronousFileChannel channel;
+    protected BlockingQueue<ByteBuffer> freeBuffers;
+    protected int queueDepth;
+    // only the submitting thread advances this; completions use the position captured at submit.
+    protected long position;
+    protected volatile Throwable failure;
+    // one permit per buffer; a submitted write holds its permit until the completion handler releases it.
+    protected Semaphore inFlight;
+
+    protected AtomicLong writes = new AtomicLong();
+    protected AtomicLong bytesWritten = new AtomicLong();
+    protected AtomicLong totalLatencyNanos = new AtomicLong();
+    protected AtomicLong maxLatencyNanos = new AtomicLong();
+    protected AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+    public AsyncFileSink(Path file, int queueDepth, int bufferBytes) throws IOException {
+        this(AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), queueDepth, bufferBytes);
+    }
+
+    AsyncFileSink(AsynchronousFileChannel channel, int queueDepth, int bufferBytes) {
+        this.channel = channel;
+        this.queueDepth = queueDepth;
+        this.inFlight = new Semaphore(queueDepth);
+        this.freeBuffers = new ArrayBlockingQueue<>(queueDepth);
+        for (int i = 0; i < queueDepth; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(bufferBytes));
+        }
+    }
+
+    /**
+     * Blocks until a write completes if all buffers are in flight.
+     */
+    @Override
+    public ByteBuffer acquire() throws IOException {
+        try {
+            ByteBuffer buf = freeBuffers.take();
+            if(failure != null) {
+                freeBuffers.add(buf);
+                checkFailure();
+            }
+            return buf;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes the buffer's contents (from 0 to its current position) after everything submitted before it.
+     * The caller must not touch the buffer again.
+     */
+    @Override
+    public void submit(ByteBuffer buf) throws IOException {
+        if(failure != null) {
+            recycle(buf);
+            checkFailure();
+        }
+        buf.flip();
+        long writePosition = position;
+        position += buf.remaining();
+        // never blocks: the caller got buf from the free list, so fewer than queueDepth writes are in flight.
+        inFlight.acquireUninterruptibly();
+        PendingWrite write = new PendingWrite(buf, writePosition, System.nanoTime());
+        WriteCompletion completion = new WriteCompletion();
+        try {
+            channel.write(buf, writePosition, write, completion);
+        } catch (RuntimeException e) {
+            completion.failed(e, write);
+            checkFailure();
+        }
+    }
+
+    /**
+     * Waits for every submitted write to complete or fail, then closes the channel and reports the first failure.
+     * Buffers the caller acquired but never submitted do not hold it up. Calling it again does nothing new.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            inFlight.acquire(queueDepth);
+            inFlight.release(queueDepth);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            channel.close();
+        }
+        checkFailure();
+    }
+
+    @Override
+    public String stats() {
+        long count = writes.get();
+        StringBuilder sb = new StringBuilder(String.format("async sink: depth %d, %d writes, %d bytes, avg %d us, max %d us",
+            queueDepth, count, bytesWritten.get(), count == 0 ? 0 : totalLatencyNanos.get() / count / 1000, maxLatencyNanos.get() / 1000));
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            long bucket = latencyHistogram.get(i);
+            if(bucket > 0) {
+                sb.append(String.format("%n  < %d us: %d", 1L << i, bucket));
+            }
+        }
+        return sb.toString();
+    }
+
+    protected void checkFailure() throws IOException {
+        if(failure != null) {
+            throw new IOException("async write failed", failure);
+        }
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        recycle(buf);
+    }
+
+    protected void recycle(ByteBuffer buf) {
+        buf.clear();
+        freeBuffers.add(buf);
+    }
+
+    protected void recordLatency(long nanos, int bytes) {
+        writes.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+        totalLatencyNanos.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+        long micros = nanos / 1000;
+        int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        latencyHistogram.incrementAndGet(bucket);
+    }
+
+    class PendingWrite {
+        protected ByteBuffer buf;
+        protected long startPosition;
+        protected long startNanos;
+
+        PendingWrite(ByteBuffer buf, long startPosition, long startNanos) {
+            this.buf = buf;
+            this.startPosition = startPosition;
+            this.startNanos = startNanos;
+        }
+    }
+
+    class WriteCompletion implements CompletionHandler<Integer, PendingWrite> {
+        @Override
+        public void completed(Integer result, PendingWrite write) {
+            ByteBuffer buf = write.buf;
+            if(buf.hasRemaining()) {
+                // short write: continue from where the device stopped, the buffer's position already moved.
+                try {
+                    channel.write(buf, write.startPosition + buf.position(), write, this);
+                } catch (RuntimeException e) {
+                    failed(e, write);
+                }
+                return;
+            }
+            recordLatency(System.nanoTime() - write.startNanos, buf.limit());
+            // permit first: whoever takes the buffer next must find a permit free in submit().
+            inFlight.release();
+            recycle(buf);
+        }
+
+        @Override
+        public void failed(Throwable exc, PendingWrite write) {
+            if(failure == null) {
+                failure = exc;
+            }
+            inFlight.release();
+            recycle(write.buf);
+        }
+    }
+}
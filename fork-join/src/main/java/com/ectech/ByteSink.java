@@ -0,0 +1,23 @@
+package com.ectech;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for encoded batches of combos. The sink owns its buffers: acquire() one, fill it from position 0,
+ * submit() it, and the sink hands it out again once the bytes are written.
+ */
+public interface ByteSink extends Closeable
+{
+    ByteBuffer acquire() throws IOException;
+
+    void submit(ByteBuffer buf) throws IOException;
+
+    /**
+     * Returns an acquired buffer without writing it, e.g. when generation stops early.
+     */
+    void release(ByteBuffer buf);
+
+    String stats();
+}
@@ -0,0 +1,127 @@
+package com.ectech;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams encoded batches to stdout or a named pipe through a WritableByteChannel, so a downstream process reads
+ * them without a round trip through /tmp. Buffers are direct, so a write goes from the buffer to the fd without an
+ * extra heap copy; files that already exist go through transferFully, which is sendfile on Linux.
+ *
+ * Writes loop until the buffer is drained, since a pipe accepts at most its capacity per call. When the reader
+ * goes away the write fails with EPIPE (the JVM ignores SIGPIPE), which is reported as ReaderClosedException so
+ * callers can stop generating instead of failing.
+ */
+public class ChannelSink implements ByteSink
+{
+    protected WritableByteChannel channel;
+    protected BlockingQueue<ByteBuffer> freeBuffers;
+    protected long writes;
+    protected long bytesWritten;
+
+    /**
+     * The channel stays open on close(); whoever opened it closes it.
+     */
+    public ChannelSink(WritableByteChannel channel, int buffers, int bufferBytes) {
+        this.channel = channel;
+        this.freeBuffers = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(bufferBytes));
+        }
+    }
+
+    /**
+     * "-" is stdout; anything else is opened for writing, which for a named pipe blocks until a reader opens it.
+     */
+    public static WritableByteChannel open(String output) throws IOException {
+        if(output.equals("-")) {
+            return new FileOutputStream(FileDescriptor.out).getChannel();
+        }
+        return FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public ByteBuffer acquire() throws IOException {
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes the buffer's contents (from 0 to its current position) before returning.
+     */
+    @Override
+    public void submit(ByteBuffer buf) throws IOException {
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) {
+                bytesWritten += channel.write(buf);
+            }
+            writes++;
+        } catch (IOException e) {
+            throw readerClosedOr(e, bytesWritten);
+        } finally {
+            release(buf);
+        }
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        buf.clear();
+        freeBuffers.add(buf);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String stats() {
+        return String.format("channel sink: %d writes, %d bytes", writes, bytesWritten);
+    }
+
+    /**
+     * Copies a whole file to the channel with FileChannel.transferTo, resuming after short transfers.
+     */
+    public static long transferFully(Path source, WritableByteChannel target) throws IOException {
+        long position = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
+            }
+        } catch (IOException e) {
+            throw readerClosedOr(e, position);
+        }
+        return position;
+    }
+
+    static IOException readerClosedOr(IOException e, long bytesWritten) {
+        // EPIPE only shows up in the message; there is no errno on IOException.
+        if(e.getMessage() != null && e.getMessage().contains("Broken pipe")) {
+            return new ReaderClosedException(bytesWritten, e);
+        }
+        return e;
+    }
+
+    public static class ReaderClosedException extends IOException {
+        protected long bytesWritten;
+
+        public ReaderClosedException(long bytesWritten, IOException cause) {
+            super("reader closed the stream after " + bytesWritten + " bytes", cause);
+            this.bytesWritten = bytesWritten;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.ectech;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * mvn clean package exec:exec -Dapp.args="--engine inline --depth 8 --parallelism 4"
+ * Discussion: One driver for all the engines, so switching strategy no longer means editing app.main.class and the
+ * hard coded startCompute(7) in each main. A warm-up run at a small depth happens first, so the reported time
+ * excludes JIT compilation.
+ *
+ * Startup for many short runs can be cut with an AppCDS archive (JDK 13+ for the dynamic dump):
+ *   mvn package exec:exec -Pcds-dump -Dapp.args="--depth 4"    writes target/calllogs.jsa on exit
+ *   mvn exec:exec -Pcds -Dapp.args="--engine queue --depth 6"   maps the archive at startup
+ * or directly: java -XX:SharedArchiveFile=target/calllogs.jsa -Xlog:disable -Xlog:all=warning:stderr -cp target/fork-join-calllogs-1.0-SNAPSHOT.jar com.ectech.ComboLauncher ...
+ * The classpath must match the one used for the dump, or the JVM drops the archive (check with -Xlog:cds).
+ * The JVM logs to stdout by default, so keep the -Xlog options with --sink stdout: a stale archive warning would
+ * otherwise land in the combo stream, and System.setOut cannot redirect what the JVM writes itself.
+ *
+ * --sink stdout and --sink pipe --output /path/to/fifo stream the combos to another process. The suffix engine
+ * writes its batches straight to the channel and the partitioned engine transfers its shard files to it; the other
+ * engines still write their /tmp file, which is then sent with FileChannel.transferTo. With stdout, progress messages go to stderr so they do not mix with the combos:
+ *   java -cp target/classes com.ectech.ComboLauncher --engine suffix --depth 9 --sink stdout | sort -R | head
+ */
+public class ComboLauncher
+{
+    enum Engine {
+        PRIORITY("/tmp/concurrent-combos-%d.txt"),
+        QUEUE("/tmp/concurrent-combos-%d.txt"),
+        INLINE("/tmp/concurrent-combos-%d.txt"),
+        INMEMORY("/tmp/combos-%d.txt"),
+        BIGINTEGER("/tmp/combos-%d.txt"),
+        PARTITIONED("/tmp/partitioned-combos-%d.txt"),
+        SUFFIX("/tmp/suffix-combos-%d.txt");
+
+        // where the engine's startCompute writes, used to stream the result when the engine cannot.
+        final String outputFile;
+
+        Engine(String outputFile) {
+            this.outputFile = outputFile;
+        }
+    }
+    enum Sink { FILE, ASYNC, STDOUT, PIPE }
+
+    Engine engine = Engine.PRIORITY;
+    Sink sink = Sink.FILE;
+    int depth = 7;
+    int warmupDepth = 4;
+    // 0 means use ForkJoinPool.commonPool().
+    int parallelism = 0;
+    // 0 means keep the engine's own default.
+    int queueCapacity = 0;
+    int asyncQueueDepth = 8;
+    int workers = 4;
+    // ForkJoinPool rejects a parallelism above this.
+    static final int MAX_PARALLELISM = 0x7fff;
+    // named pipe (or file) for --sink pipe.
+    String output;
+    // options given on the command line, so one the chosen engine or sink would ignore can be rejected.
+    Set<String> given = new HashSet<>();
+    ForkJoinPool pool;
+    WritableByteChannel channel;
+
+    public static void main( String[] args ) throws IOException {
+        ComboLauncher launcher = new ComboLauncher();
+        try {
+            launcher.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+        launcher.run();
+    }
+
+    static void printUsage() {
+        System.out.println("Usage: ComboLauncher [--engine priority|queue|inline|inmemory|biginteger|partitioned|suffix] [--depth 7]\n"
+            + "    [--sink file|async|stdout|pipe] [--output fifo, pipe only] [--parallelism N] [--warmup-depth 4, 0 to skip]\n"
+            + "    [--queue-capacity N, priority and queue] [--async-queue-depth 8, suffix or priority with async]\n"
+            + "    [--workers 4, partitioned]");
+    }
+
+    protected void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            // exec:exec passes an empty ${app.args} from the pom as a blank argument.
+            if(arg.isBlank()) {
+                continue;
+            }
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            given.add(arg);
+            switch (arg) {
+                case "--engine":
+                    engine = Engine.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--sink":
+                    sink = Sink.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "--warmup-depth":
+                    warmupDepth = Integer.parseInt(value);
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(value);
+                    break;
+                case "--queue-capacity":
+                    queueCapacity = Integer.parseInt(value);
+                    break;
+                case "--async-queue-depth":
+                    asyncQueueDepth = Integer.parseInt(value);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(value);
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        requireRange("--depth", depth, 1, Digits.MAX_DEPTH);
+        requireRange("--warmup-depth", warmupDepth, 0, Digits.MAX_DEPTH);
+        requireRange("--parallelism", parallelism, 0, MAX_PARALLELISM);
+        requireRange("--queue-capacity", queueCapacity, 0, Integer.MAX_VALUE);
+        requireRange("--async-queue-depth", asyncQueueDepth, 1, Integer.MAX_VALUE);
+        requireRange("--workers", workers, 1, Integer.MAX_VALUE);
+        // a benchmark must run the configuration it asked for, so options that would be ignored are errors.
+        if(sink == Sink.ASYNC && engine != Engine.PRIORITY && engine != Engine.SUFFIX) {
+            throw new IllegalArgumentException("--sink async is only supported by the priority and suffix engines");
+        }
+        if(sink == Sink.PIPE && output == null) {
+            throw new IllegalArgumentException("--sink pipe needs --output");
+        }
+        if(given.contains("--output") && sink != Sink.PIPE) {
+            throw new IllegalArgumentException("--output is only used with --sink pipe");
+        }
+        if(given.contains("--queue-capacity") && engine != Engine.PRIORITY && engine != Engine.QUEUE) {
+            throw new IllegalArgumentException("--queue-capacity is only used by the priority and queue engines");
+        }
+        if(given.contains("--async-queue-depth") && engine != Engine.SUFFIX && !(engine == Engine.PRIORITY && sink == Sink.ASYNC)) {
+            throw new IllegalArgumentException("--async-queue-depth is only used by the suffix engine and by --engine priority --sink async");
+        }
+        if(given.contains("--workers") && engine != Engine.PARTITIONED) {
+            throw new IllegalArgumentException("--workers is only used by the partitioned engine");
+        }
+        if(warmupDepth >= depth && given.contains("--warmup-depth")) {
+            throw new IllegalArgumentException("--warmup-depth must be below --depth, or 0 to skip the warm-up");
+        }
+        if(warmupDepth > 0 && given.contains("--warmup-depth") && engine == Engine.PARTITIONED) {
+            throw new IllegalArgumentException("the partitioned engine does not warm up; use --warmup-depth 0 or leave it out");
+        }
+    }
+
+    static void requireRange(String option, int value, int min, int max) {
+        if(value < min || value > max) {
+            throw new IllegalArgumentException(String.format("%s must be between %d and %d, got %d", option, min, max, value));
+        }
+    }
+
+    protected void run() throws IOException {
+        if(sink == Sink.STDOUT) {
+            channel = ChannelSink.open("-");
+            System.setOut(System.err);
+        } else if(sink == Sink.PIPE) {
+            channel = ChannelSink.open(output);
+        }
+        try {
+            runTimed();
+        } catch (ChannelSink.ReaderClosedException e) {
+            // the downstream process stopped reading, e.g. head; that is the end of the run, not an error.
+            System.out.println(e.getMessage());
+        } finally {
+            if(channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    protected void runTimed() throws IOException {
+        pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+        System.out.println(String.format("Starting %s engine, depth %d, sink %s, parallelism %d", engine, depth, sink, pool.getParallelism()));
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .filter(a -> a.startsWith("-XX:SharedArchiveFile") || a.startsWith("-XX:ArchiveClassesAtExit"))
+            .forEach(a -> System.out.println("class data sharing requested (not verified, see -Xlog:cds): " + a));
+
+        // the coordinator only hands out leases; the worker JVMs it spawns never see this warm-up.
+        if(warmupDepth > 0 && warmupDepth < depth && engine != Engine.PARTITIONED) {
+            LocalDateTime warmStart = LocalDateTime.now();
+            runOnce(warmupDepth, false);
+            System.out.println(String.format("Warm-up at depth %d took %d milliseconds", warmupDepth, Duration.between(warmStart, LocalDateTime.now()).toMillis()));
+        }
+
+        LocalDateTime dt = LocalDateTime.now();
+        runOnce(depth, channel != null);
+        Duration dur = Duration.between(dt, LocalDateTime.now());
+        if(dur.toMillis() < 20*1000) {
+            System.out.println(String.format("Completed in %d milliseconds", dur.toMillis()));
+        } else if(dur.toMillis() < 120*1000) {
+            System.out.println(String.format("Completed in %d:%02d:%02d, or %d milliseconds", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart(), dur.toMillis()));
+        } else {
+            System.out.println(String.format("Completed in %d:%02d:%02d", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart()));
+        }
+    }
+
+    protected void runOnce(int runDepth, boolean stream) throws IOException {
+        switch (engine) {
+            case PRIORITY: {
+                PriorityWriterApp app = new PriorityWriterApp();
+                app.commonPool = pool;
+                app.asyncQueueDepth = sink == Sink.ASYNC ? asyncQueueDepth : 0;
+                if(queueCapacity > 0) {
+                    app.queueCapacity = queueCapacity;
+                }
+                app.startCompute(runDepth);
+                break;
+            }
+            case QUEUE: {
+                ConcurrentQueueApp app = new ConcurrentQueueApp();
+                app.commonPool = pool;
+                if(queueCapacity > 0) {
+                    app.queueCapacity = queueCapacity;
+                }
+                app.startCompute(runDepth);
+                break;
+            }
+            case INLINE: {
+                InlineBatchedWriterApp app = new InlineBatchedWriterApp();
+                app.commonPool = pool;
+                app.startCompute(runDepth);
+                break;
+            }
+            case INMEMORY: {
+                InMemoryApp app = new InMemoryApp();
+                app.commonPool = pool;
+                app.startCompute(runDepth);
+                break;
+            }
+            case BIGINTEGER: {
+                BigIntegerApp app = new BigIntegerApp();
+                app.commonPool = pool;
+                app.startCompute(runDepth);
+                break;
+            }
+            case PARTITIONED: {
+                PartitionedCoordinatorApp app = new PartitionedCoordinatorApp();
+                app.workerCount = workers;
+                if(parallelism > 0) {
+                    app.workerJvmArgs.add("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + parallelism);
+                }
+                if(stream) {
+                    // shards already are source files, so they go to the channel without a concatenated copy.
+                    app.outputChannel = channel;
+                }
+                app.startCompute(runDepth);
+                return;
+            }
+            case SUFFIX: {
+                // always writes through AsyncFileSink, so --sink async is accepted but changes nothing here.
+                SuffixBlockApp app = new SuffixBlockApp();
+                app.commonPool = pool;
+                app.asyncQueueDepth = asyncQueueDepth;
+                if(stream) {
+                    app.outputChannel = channel;
+                }
+                app.startCompute(runDepth);
+                return;
+            }
+        }
+        if(stream) {
+            long bytes = ChannelSink.transferFully(Paths.get(String.format(engine.outputFile, runDepth)), channel);
+            System.out.println(String.format("Streamed %d bytes from %s", bytes, String.format(engine.outputFile, runDepth)));
+        }
+    }
+}
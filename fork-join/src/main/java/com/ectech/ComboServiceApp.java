@@ -0,0 +1,311 @@
+package com.ectech;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * mvn clean package exec:exec -Dapp.main.class=com.ectech.ComboServiceApp
+ * Discussion: Resident service mode. The JVM and its ForkJoinPool stay up between requests, so callers stop paying
+ * for startup and JIT warmup on every run.
+ *
+ * A pattern is a string of digits and 'x' wildcards, e.g. 555xxxx. Its combos are numbered 0..10^(wildcards)-1
+ * by filling the wildcards in order, and a request streams a range [from, to) of that numbering:
+ *   curl 'http://localhost:8089/combos?pattern=555xxxx&from=0&to=5000'
+ *   curl 'http://localhost:8089/cancel?id=3'
+ *   curl 'http://localhost:8089/metrics'
+ *
+ * Output is rendered in fixed blocks of BLOCK_LINES combos. Blocks are kept in a size bounded LRU cache so repeated
+ * prefixes are served from memory. The response is chunked. Only a few blocks are rendered ahead of the socket, so a
+ * slow reader holds back generation instead of filling the heap. A stream stops when the client disconnects or when
+ * /cancel is called with the id returned in the X-Stream-Id header; cancel takes effect at the next block boundary.
+ */
+public class ComboServiceApp
+{
+    static final int BLOCK_LINES = 4096;
+    ForkJoinPool commonPool = ForkJoinPool.commonPool();
+    int port = Integer.getInteger("combos.service.port", 8089);
+    long cacheBytes = Long.getLong("combos.service.cacheBytes", 64L * 1024 * 1024);
+    // blocks rendered ahead of the block being written to the client.
+    int prefetchBlocks = 4;
+    BlockCache cache;
+    AtomicLong streamIds = new AtomicLong();
+    Map<Long, AtomicBoolean> activeStreams = new ConcurrentHashMap<>();
+    AtomicLong cancelledStreams = new AtomicLong();
+    HttpServer server;
+
+    public static void main( String[] args ) throws IOException {
+        System.out.println("Starting ComboServiceApp");
+        ComboServiceApp app = new ComboServiceApp();
+        app.start();
+        System.out.println(String.format("Listening on http://localhost:%d/combos", app.server.getAddress().getPort()));
+    }
+
+    protected void start() throws IOException {
+        cache = new BlockCache(cacheBytes);
+        // render a throwaway range so the first real request does not run interpreted code.
+        Pattern warmup = new Pattern("xxxxxx");
+        for (long block = 0; block < 64; block++) {
+            renderBlock(warmup, block);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/combos", this::handleCombos);
+        server.createContext("/cancel", this::handleCancel);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    protected void stop() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    protected void handleCombos(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = queryParams(exchange);
+            Pattern pattern;
+            long from;
+            long to;
+            try {
+                pattern = new Pattern(params.getOrDefault("pattern", ""));
+                from = Long.parseLong(params.getOrDefault("from", "0"));
+                to = Math.min(pattern.count, Long.parseLong(params.getOrDefault("to", String.valueOf(pattern.count))));
+                if(from < 0 || from > to) {
+                    throw new IllegalArgumentException("expected 0 <= from <= to");
+                }
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            long id = streamIds.incrementAndGet();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            activeStreams.put(id, cancelled);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.getResponseHeaders().add("X-Stream-Id", String.valueOf(id));
+            // length 0 selects chunked transfer encoding.
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                streamRange(pattern, from, to, cancelled, body);
+            } catch (IOException e) {
+                // client went away mid stream.
+                cancelledStreams.incrementAndGet();
+            } finally {
+                activeStreams.remove(id);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes lines [from, to) of the pattern, slicing the first and last blocks, with up to prefetchBlocks blocks
+     * rendering ahead of the one being written.
+     */
+    protected void streamRange(Pattern pattern, long from, long to, AtomicBoolean cancelled, OutputStream body) throws IOException {
+        ArrayDeque<ForkJoinTask<byte[]>> window = new ArrayDeque<>();
+        long firstBlock = from / BLOCK_LINES;
+        long lastBlock = (to + BLOCK_LINES - 1) / BLOCK_LINES;
+        long nextBlock = firstBlock;
+        try {
+            for (long block = firstBlock; block < lastBlock; block++) {
+                while (nextBlock < lastBlock && window.size() <= prefetchBlocks) {
+                    long b = nextBlock++;
+                    window.add(commonPool.submit(() -> cachedBlock(pattern, b)));
+                }
+                byte[] data = window.poll().join();
+                if(cancelled.get()) {
+                    cancelledStreams.incrementAndGet();
+                    break;
+                }
+                long blockStart = block * BLOCK_LINES;
+                int startLine = (int) (Math.max(from, blockStart) - blockStart);
+                int endLine = (int) (Math.min(to, blockStart + BLOCK_LINES) - blockStart);
+                // blocks until the client drains the socket, which is what throttles the prefetch above.
+                body.write(data, startLine * pattern.width, (endLine - startLine) * pattern.width);
+            }
+        } finally {
+            for (ForkJoinTask<byte[]> pendingBlock : window) {
+                pendingBlock.cancel(false);
+            }
+        }
+    }
+
+    protected void handleCancel(HttpExchange exchange) throws IOException {
+        try {
+            String id = queryParams(exchange).get("id");
+            AtomicBoolean cancelled = null;
+            try {
+                cancelled = id == null ? null : activeStreams.get(Long.parseLong(id));
+            } catch (NumberFormatException e) {
+                // fall through to 404
+            }
+            if(cancelled == null) {
+                sendText(exchange, 404, "no such stream\n");
+                return;
+            }
+            cancelled.set(true);
+            sendText(exchange, 200, "cancelled " + id + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    protected void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder sb = new StringBuilder();
+            synchronized (cache) {
+                sb.append("cache.hits ").append(cache.hits).append('\n');
+                sb.append("cache.misses ").append(cache.misses).append('\n');
+                sb.append("cache.evictions ").append(cache.evictions).append('\n');
+                sb.append("cache.evictedBytes ").append(cache.evictedBytes).append('\n');
+                sb.append("cache.entries ").append(cache.size()).append('\n');
+                sb.append("cache.bytes ").append(cache.currentBytes).append('\n');
+                sb.append("cache.maxBytes ").append(cache.maxBytes).append('\n');
+            }
+            sb.append("streams.active ").append(activeStreams.size()).append('\n');
+            sb.append("streams.cancelled ").append(cancelledStreams.get()).append('\n');
+            sendText(exchange, 200, sb.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    protected byte[] cachedBlock(Pattern pattern, long block) {
+        String key = pattern.text + '#' + block;
+        byte[] data = cache.lookup(key);
+        if(data == null) {
+            data = renderBlock(pattern, block);
+            cache.store(key, data);
+        }
+        return data;
+    }
+
+    // Fills the wildcards of each line with the digits of its index; fixed digits are copied from the pattern.
+    protected byte[] renderBlock(Pattern pattern, long block) {
+        long start = block * BLOCK_LINES;
+        int lines = (int) Math.min(BLOCK_LINES, pattern.count - start);
+        byte[] data = new byte[lines * pattern.width];
+        for (int line = 0; line < lines; line++) {
+            int offset = line * pattern.width;
+            System.arraycopy(pattern.template, 0, data, offset, pattern.width);
+            long value = start + line;
+            for (int w = pattern.wildcards.length - 1; w >= 0; w--) {
+                data[offset + pattern.wildcards[w]] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+        return data;
+    }
+
+    static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if(eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    static class Pattern {
+        protected String text;
+        // one rendered line with the wildcards still in place, including the trailing newline.
+        protected byte[] template;
+        protected int[] wildcards;
+        protected int width;
+        protected long count;
+
+        public Pattern(String text) {
+            if(text.isEmpty() || !text.matches("[0-9x]+")) {
+                throw new IllegalArgumentException("pattern must be digits and 'x' wildcards, e.g. 555xxxx");
+            }
+            this.text = text;
+            this.width = text.length() + 1;
+            this.template = (text + '\n').getBytes(StandardCharsets.US_ASCII);
+            int wildcardCount = (int) text.chars().filter(c -> c == 'x').count();
+            if(wildcardCount > 18) {
+                throw new IllegalArgumentException("at most 18 wildcards are supported");
+            }
+            this.wildcards = new int[wildcardCount];
+            int w = 0;
+            this.count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if(text.charAt(i) == 'x') {
+                    wildcards[w++] = i;
+                    count *= 10;
+                }
+            }
+        }
+    }
+
+    /**
+     * LRU of rendered blocks bounded by total bytes rather than entry count, since blocks for long patterns are wider.
+     */
+    static class BlockCache extends LinkedHashMap<String, byte[]> {
+        protected long maxBytes;
+        protected long currentBytes;
+        protected long hits;
+        protected long misses;
+        protected long evictions;
+        protected long evictedBytes;
+
+        public BlockCache(long maxBytes) {
+            super(256, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        public synchronized byte[] lookup(String key) {
+            byte[] data = get(key);
+            if(data == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return data;
+        }
+
+        public synchronized void store(String key, byte[] data) {
+            byte[] previous = put(key, data);
+            currentBytes += data.length - (previous == null ? 0 : previous.length);
+            // removeEldestEntry only drops one entry per put, so trim explicitly until under the bound.
+            var it = entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                byte[] evicted = it.next().getValue();
+                it.remove();
+                currentBytes -= evicted.length;
+                evictions++;
+                evictedBytes += evicted.length;
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.stream.Stream;
 public class ConcurrentQueueApp
 {
     ForkJoinPool commonPool = ForkJoinPool.commonPool();
+    int queueCapacity = 100;
     public static void main( String[] args ) throws IOException {
         System.out.println("Starting ConcurrentQueueApp");
         ConcurrentQueueApp app = new ConcurrentQueueApp();
@@ -64,7 +65,7 @@ public class ConcurrentQueueApp
         // ConcurrentLinkedQueue<String> lq = new ConcurrentLinkedQueue<>();
         // we're creating 10^(depth-1) workers and a single writer. Queue length should be at least 10^(depth-2)
         // Otherwise we'll have hundreds of blocked workers.
-        LinkedBlockingQueue<QueueItem<String>> lq = new LinkedBlockingQueue(100);
+        LinkedBlockingQueue<QueueItem<String>> lq = new LinkedBlockingQueue(queueCapacity);
         // Results:
         // works with add|put, depth: 7, cap: 1000000
         // freezes with add, depth: 7, cap: 100000
@@ -0,0 +1,21 @@
+package com.ectech;
+
+/**
+ * Arithmetic on the combo space shared by the engines that index combos as numbers.
+ */
+public final class Digits
+{
+    // 10^18 is the largest power of ten that fits in a long.
+    static final int MAX_DEPTH = 18;
+
+    private Digits() {
+    }
+
+    static long pow10(int exp) {
+        long result = 1;
+        for (int i = 0; i < exp; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,387 @@
+package com.ectech;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * mvn clean package exec:exec -Dapp.main.class=com.ectech.PartitionedCoordinatorApp
+ * Discussion: This impl splits the combo space into leases (contiguous ranges of combos) and hands them to
+ * worker JVMs over a line based protocol on a loopback socket. Each worker fills its lease with a ForkJoin
+ * RangeAction and writes one shard file. The coordinator reassigns a lease if its worker dies or times out,
+ * kills a worker that timed out, restarts dead workers, then writes a manifest and concatenates the shards in lease order, either into one file
+ * or, when outputChannel is set, straight to that channel with transferTo.
+ *
+ * Protocol (one line per message):
+ *   worker to coordinator: READY pid | DONE leaseId lines
+ *   coordinator to worker: LEASE leaseId start end depth shardFile | SHUTDOWN
+ *
+ * To exercise lease reassignment locally, run with -Dcombos.crashFirstWorkerAfter=N and the first worker
+ * exits without reporting its (N+1)th lease.
+ * The server socket binds to loopback only; spreading across hosts needs the bind address and the spawn step changed.
+ */
+public class PartitionedCoordinatorApp
+{
+    ForkJoinPool commonPool = ForkJoinPool.commonPool();
+    int workerCount = 4;
+    // number of leading digits that identify a lease, so there are 10^leaseDigits leases.
+    int leaseDigits = 2;
+    int maxWorkerRestarts = 8;
+    long leaseTimeoutMillis = 10 * 60 * 1000;
+    int crashFirstWorkerAfter = Integer.getInteger("combos.crashFirstWorkerAfter", -1);
+    // extra JVM options for the worker processes, e.g. common pool parallelism.
+    List<String> workerJvmArgs = new ArrayList<>();
+    // when set, shards are sent to this channel (stdout or a pipe) instead of being joined into the /tmp file.
+    WritableByteChannel outputChannel;
+
+    public static void main( String[] args ) throws IOException {
+        if(args.length > 0 && args[0].equals("worker")) {
+            int crashAfter = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+            new PartitionedCoordinatorApp().runWorker(Integer.parseInt(args[1]), crashAfter);
+            return;
+        }
+        System.out.println("Starting PartitionedCoordinatorApp");
+        PartitionedCoordinatorApp app = new PartitionedCoordinatorApp();
+        LocalDateTime dt = LocalDateTime.now();
+        app.startCompute(7);
+        Duration dur = Duration.between(dt, LocalDateTime.now());
+        if(dur.toMillis() < 20*1000) {
+            System.out.println(String.format("Completed in %d milliseconds", dur.toMillis()));
+        } else if(dur.toMillis() < 120*1000) {
+            System.out.println(String.format("Completed in %d:%02d:%02d, or %d milliseconds", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart(), dur.toMillis()));
+        } else {
+            System.out.println(String.format("Completed in %d:%02d:%02d", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart()));
+        }
+        // depth of 6 creates almost 6Mb
+        // 7 creates 9 999 999 ~10M ~70Mb
+        // 8 creates 100M=800Mb
+        // 9 creates 1000M=9Gb
+        // 10 creates 10,000M= 100Gb
+    }
+
+    //   Coordinator
+    //      accept loop -> LeaseHandler per worker connection
+    //          pending leases -> LEASE -> worker JVM -> shard file -> DONE
+    //      monitor: restart dead workers until every lease is done
+    //      manifest + concatenate shards
+    protected void startCompute(int depth) throws IOException {
+        String fileName = "/tmp/partitioned-combos-" + depth + ".txt";
+        Path shardDir = Paths.get("/tmp/partitioned-combos-" + depth);
+        Files.createDirectories(shardDir);
+
+        int digits = Math.min(leaseDigits, depth);
+        List<Lease> leases = new ArrayList<>();
+        long leaseSize = Digits.pow10(depth - digits);
+        for (int i = 0; i < Digits.pow10(digits); i++) {
+            leases.add(new Lease(i, i * leaseSize, (i + 1) * leaseSize, shardDir.resolve(String.format("shard-%05d.txt", i))));
+        }
+        BlockingQueue<Lease> pending = new LinkedBlockingQueue<>(leases);
+        CountDownLatch remaining = new CountDownLatch(leases.size());
+
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        Thread handler = new Thread(new LeaseHandler(socket, depth, pending, remaining));
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        if(!server.isClosed()) {
+                            System.out.println(e.toString());
+                        }
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            List<Process> workers = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(spawnWorker(server.getLocalPort(), i == 0 ? crashFirstWorkerAfter : -1));
+            }
+            int restarts = 0;
+            try {
+                while (!remaining.await(1, TimeUnit.SECONDS)) {
+                    for (int i = 0; i < workers.size(); i++) {
+                        if(!workers.get(i).isAlive() && remaining.getCount() > 0) {
+                            if(restarts++ >= maxWorkerRestarts) {
+                                throw new IOException("too many worker restarts, " + remaining.getCount() + " leases unfinished");
+                            }
+                            System.out.println(String.format("worker %d exited with %d. restarting", i, workers.get(i).exitValue()));
+                            workers.set(i, spawnWorker(server.getLocalPort(), -1));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                for (Process worker : workers) {
+                    try {
+                        if(!worker.waitFor(5, TimeUnit.SECONDS)) {
+                            worker.destroy();
+                        }
+                    } catch (InterruptedException e) {
+                        worker.destroy();
+                    }
+                }
+            }
+        }
+
+        String destination = outputChannel == null ? fileName : "output stream";
+        long totalLines = 0;
+        try (BufferedWriter manifest = new BufferedWriter(new FileWriter(shardDir.resolve("manifest.txt").toFile()))) {
+            manifest.write(String.format("depth=%d leases=%d output=%s%n", depth, leases.size(), destination));
+            for (Lease lease : leases) {
+                manifest.write(String.format("%s %d %d %d%n", lease.shard.getFileName(), lease.start, lease.end, lease.lines));
+                totalLines += lease.lines;
+            }
+        }
+        if(outputChannel != null) {
+            for (Lease lease : leases) {
+                ChannelSink.transferFully(lease.shard, outputChannel);
+            }
+        } else {
+            try (FileChannel out = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Lease lease : leases) {
+                    ChannelSink.transferFully(lease.shard, out);
+                }
+            }
+        }
+        System.out.println(String.format("Generated %d combos in %d shards, written to: %s", totalLines, leases.size(), destination));
+    }
+
+    protected Process spawnWorker(int port, int crashAfter) throws IOException {
+        String javaBin = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        // JVM warnings (e.g. -Xlog:cds) go to stderr too, like the coordinator's under the cds profiles.
+        List<String> command = new ArrayList<>(List.of(javaBin, "-Xlog:disable", "-Xlog:all=warning:stderr"));
+        command.addAll(workerJvmArgs);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), PartitionedCoordinatorApp.class.getName(), "worker", String.valueOf(port)));
+        if(crashAfter >= 0) {
+            command.add(String.valueOf(crashAfter));
+        }
+        // worker stdout must never reach fd 1, which may be the combo stream; copy it to stderr instead.
+        Process worker = new ProcessBuilder(command)
+            .redirectInput(ProcessBuilder.Redirect.INHERIT)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        Thread drain = new Thread(() -> {
+            try (InputStream workerOut = worker.getInputStream()) {
+                workerOut.transferTo(System.err);
+            } catch (IOException e) {
+                // worker exited
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        return worker;
+    }
+
+    protected void runWorker(int port, int crashAfter) throws IOException {
+        long pid = ProcessHandle.current().pid();
+        int completed = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true)) {
+            out.println("READY " + pid);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if(parts[0].equals("SHUTDOWN")) {
+                    break;
+                }
+                int leaseId = Integer.parseInt(parts[1]);
+                long start = Long.parseLong(parts[2]);
+                long end = Long.parseLong(parts[3]);
+                int depth = Integer.parseInt(parts[4]);
+                Path shard = Paths.get(parts[5]);
+                writeShard(shard, start, end, depth);
+                if(completed++ == crashAfter) {
+                    System.out.println(String.format("worker %d crashing while holding lease %d", pid, leaseId));
+                    System.exit(3);
+                }
+                out.println(String.format("DONE %d %d", leaseId, end - start));
+            }
+        }
+    }
+
+    // Writes to a temp file and renames it, so a worker dying mid-lease never leaves a shard that looks complete.
+    protected void writeShard(Path shard, long start, long end, int depth) throws IOException {
+        Path tmp = shard.resolveSibling(shard.getFileName() + ".part-" + ProcessHandle.current().pid());
+        int chunkLines = 1 << 20;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            for (long chunkStart = start; chunkStart < end; chunkStart += chunkLines) {
+                long chunkEnd = Math.min(end, chunkStart + chunkLines);
+                byte[] chunk = new byte[(int) (chunkEnd - chunkStart) * (depth + 1)];
+                commonPool.invoke(new RangeAction(chunk, chunkStart, chunkStart, chunkEnd, depth));
+                fos.write(chunk);
+            }
+        }
+        Files.move(tmp, shard, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    class Lease {
+        protected int id;
+        protected long start;
+        protected long end;
+        protected Path shard;
+        protected volatile long lines;
+
+        public Lease(int id, long start, long end, Path shard) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * Serves one worker connection. A lease is handed back to the pending queue if the worker disconnects or
+     * stays silent past the lease timeout; duplicate completions are ignored.
+     */
+    class LeaseHandler implements Runnable {
+        private Socket socket;
+        private int depth;
+        private BlockingQueue<Lease> pending;
+        private CountDownLatch remaining;
+        // sent with READY; -1 until then.
+        private long workerPid = -1;
+
+        LeaseHandler(Socket socket, int depth, BlockingQueue<Lease> pending, CountDownLatch remaining) {
+            this.socket = socket;
+            this.depth = depth;
+            this.pending = pending;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void run() {
+            Lease current = null;
+            try (Socket s = socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII), true)) {
+                s.setSoTimeout((int) leaseTimeoutMillis);
+                String ready = in.readLine();
+                if(ready == null || !ready.startsWith("READY ")) {
+                    return;
+                }
+                workerPid = Long.parseLong(ready.substring("READY ".length()));
+                while (remaining.getCount() > 0) {
+                    current = pending.poll(200, TimeUnit.MILLISECONDS);
+                    if(current == null) {
+                        // other workers still hold leases; wait in case one of them dies.
+                        continue;
+                    }
+                    out.println(String.format("LEASE %d %d %d %d %s", current.id, current.start, current.end, depth, current.shard));
+                    String reply = in.readLine();
+                    if(reply == null) {
+                        throw new IOException("worker disconnected");
+                    }
+                    String[] parts = reply.split(" ");
+                    if(!parts[0].equals("DONE") || Integer.parseInt(parts[1]) != current.id) {
+                        throw new IOException("unexpected reply: " + reply);
+                    }
+                    complete(current, Long.parseLong(parts[2]));
+                    current = null;
+                }
+                out.println("SHUTDOWN");
+            } catch (SocketTimeoutException e) {
+                System.out.println("worker timed out: " + e.toString());
+                killWedgedWorker();
+            } catch (IOException e) {
+                System.out.println("lost worker: " + e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if(current != null) {
+                    System.out.println(String.format("reassigning lease %d", current.id));
+                    pending.add(current);
+                }
+            }
+        }
+
+        // a worker that stops answering is still alive, so the monitor would never replace it; kill it so it does.
+        // Only our own children are touched, in case the pid came from something else connecting to the port.
+        private void killWedgedWorker() {
+            long coordinatorPid = ProcessHandle.current().pid();
+            ProcessHandle.of(workerPid)
+                .filter(worker -> worker.parent().map(parent -> parent.pid() == coordinatorPid).orElse(false))
+                .ifPresent(worker -> {
+                    System.out.println(String.format("killing unresponsive worker %d", workerPid));
+                    worker.destroyForcibly();
+                });
+        }
+
+        private void complete(Lease lease, long lines) {
+            synchronized (lease) {
+                if(lease.lines == 0) {
+                    lease.lines = lines;
+                    remaining.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a fixed width region of the chunk: combo n lands at (n - chunkStart) * (depth + 1),
+     * so the halves can be written independently without joining strings.
+     */
+    static class RangeAction extends RecursiveAction {
+        static final int THRESHOLD = 4096;
+        protected byte[] chunk;
+        protected long chunkStart;
+        protected long start;
+        protected long end;
+        protected int depth;
+
+        public RangeAction(byte[] chunk, long chunkStart, long start, long end, int depth) {
+            this.chunk = chunk;
+            this.chunkStart = chunkStart;
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start > THRESHOLD) {
+                long mid = start + (end - start) / 2;
+                ForkJoinTask.invokeAll(new RangeAction(chunk, chunkStart, start, mid, depth), new RangeAction(chunk, chunkStart, mid, end, depth));
+                return;
+            }
+            int width = depth + 1;
+            for (long n = start; n < end; n++) {
+                int offset = (int) (n - chunkStart) * width;
+                long value = n;
+                for (int j = depth - 1; j >= 0; j--) {
+                    chunk[offset + j] = (byte) ('0' + value % 10);
+                    value /= 10;
+                }
+                chunk[offset + depth] = '\n';
+            }
+        }
+    }
+}
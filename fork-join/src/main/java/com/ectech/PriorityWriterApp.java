@@ -4,6 +4,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -29,6 +30,11 @@ import java.util.stream.Stream;
 public class PriorityWriterApp
 {
     ForkJoinPool commonPool = ForkJoinPool.commonPool();
+    // 0 keeps the synchronous BufferedWriter; otherwise the number of AsyncFileSink writes kept in flight.
+    int asyncQueueDepth = Integer.getInteger("combos.asyncQueueDepth", 0);
+    int asyncBufferBytes = 1 << 20;
+    int queueCapacity = 1000;
+    volatile IOException writerFailure;
     public static void main( String[] args ) throws IOException {
         System.out.println("Starting PriorityWriterApp");
         PriorityWriterApp app = new PriorityWriterApp();
@@ -62,9 +68,9 @@ public class PriorityWriterApp
         // ConcurrentLinkedQueue<String> lq = new ConcurrentLinkedQueue<>();
         // we're creating 10^(depth-1) workers and a single writer. Queue length should be at least 10^(depth-2)
         // Otherwise we'll have hundreds of blocked workers.
-        LinkedBlockingQueue<QueueItem<String>> lq = new LinkedBlockingQueue(1000);
+        LinkedBlockingQueue<QueueItem<String>> lq = new LinkedBlockingQueue(queueCapacity);
         RecursiveAction notifierAction = new QueueNotifierAction(lq, new PhoneDepthLevelTask(depth, lq));
-        Runnable writerMethod = new Runnable() {
+        Runnable writerMethod = asyncQueueDepth > 0 ? new AsyncWriter(fileName, lq) : new Runnable() {
 
             @Override
             public void run() {
@@ -97,12 +103,92 @@ public class PriorityWriterApp
         writer.setPriority(9);
         writer.start();
 
-        commonPool.invoke(notifierAction);
-
+        try {
+            commonPool.invoke(notifierAction);
+        } catch (RuntimeException e) {
+            // the end marker will never be queued, so stop the writer rather than leave it blocked on take().
+            writer.interrupt();
+            throw e;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if(writerFailure != null) {
+            throw new IOException("writing " + fileName + " failed", writerFailure);
+        }
 
         // System.out.println(String.format("Generated %d combos. remaining %d, written to: %s", generatedCombos.size(), filteredCombos.size(), fileName));
     }
 
+    /**
+     * Packs queued combos into sink buffers and submits each full buffer without waiting for the previous write,
+     * so the device sees up to asyncQueueDepth requests at once.
+     */
+    class AsyncWriter implements Runnable {
+        private String fileName;
+        private LinkedBlockingQueue<QueueItem<String>> lq;
+
+        AsyncWriter(String fileName, LinkedBlockingQueue<QueueItem<String>> lq) {
+            this.fileName = fileName;
+            this.lq = lq;
+        }
+
+        @Override
+        public void run() {
+            // once the end marker is taken nothing else will be queued, so a failure after it must not wait for one.
+            boolean reachedEnd = false;
+            AsyncFileSink written;
+            try (AsyncFileSink sink = new AsyncFileSink(Paths.get(fileName), asyncQueueDepth, asyncBufferBytes)) {
+                ByteBuffer buf = sink.acquire();
+                QueueItem<String> item;
+                while (true) {
+                    item = lq.take();
+                    if(item.isPastTheEnd()) {
+                        reachedEnd = true;
+                        System.out.println("finished writing all elements. breaking.");
+                        break;
+                    }
+                    String combo = item.getItem();
+                    if(buf.remaining() < combo.length() + 1) {
+                        sink.submit(buf);
+                        buf = sink.acquire();
+                    }
+                    for (int i = 0; i < combo.length(); i++) {
+                        buf.put((byte) combo.charAt(i));
+                    }
+                    buf.put((byte) '\n');
+                }
+                sink.submit(buf);
+                written = sink;
+            } catch (InterruptedException e) {
+                System.out.println(e.toString());
+                throw new RuntimeException(e);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                writerFailure = e;
+                if(!reachedEnd) {
+                    discardUntilEnd();
+                }
+                return;
+            }
+            // close waited for the writes still in flight, so the stats are complete.
+            System.out.println(written.stats());
+        }
+
+        // workers block on a full queue, so keep taking items after a failed write or the pool never finishes.
+        private void discardUntilEnd() {
+            try {
+                while (!lq.take().isPastTheEnd()) {
+                    // dropped
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     class QueueItem<T> {
         protected T item;
         protected boolean isPastTheEnd;
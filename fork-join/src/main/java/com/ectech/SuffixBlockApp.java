@@ -0,0 +1,215 @@
+package com.ectech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * mvn clean package exec:exec -Dapp.args="--engine suffix --depth 8"
+ * Discussion: Every subtree below level depth-k produces the same last k digits, so this impl renders that
+ * 10^k line suffix block once and, for each prefix, copies the block and patches the prefix bytes of every line.
+ * Generation becomes a memcpy plus a few byte stores per line instead of building strings digit by digit.
+ *
+ * k is the largest value whose block fits in half the L2 cache (read from sysfs, or -Dcombos.l2Bytes), leaving
+ * the other half for the destination buffer streaming through.
+ * Buffers are filled by ForkJoin actions and written in prefix order through an AsyncFileSink, or a ChannelSink
+ * when outputChannel is set; the number of buffers being filled ahead of the writer is bounded by the sink's depth.
+ */
+public class SuffixBlockApp
+{
+    ForkJoinPool commonPool = ForkJoinPool.commonPool();
+    long l2Bytes = Long.getLong("combos.l2Bytes", detectL2Bytes());
+    int asyncQueueDepth = 8;
+    // destination buffers are a whole number of blocks of roughly this size.
+    int targetBufferBytes = 4 << 20;
+    // when set, batches stream to this channel (stdout or a pipe) instead of the /tmp file.
+    WritableByteChannel outputChannel;
+
+    public static void main( String[] args ) throws IOException {
+        System.out.println("Starting SuffixBlockApp");
+        SuffixBlockApp app = new SuffixBlockApp();
+        LocalDateTime dt = LocalDateTime.now();
+        app.startCompute(7);
+        Duration dur = Duration.between(dt, LocalDateTime.now());
+        if(dur.toMillis() < 20*1000) {
+            System.out.println(String.format("Completed in %d milliseconds", dur.toMillis()));
+        } else if(dur.toMillis() < 120*1000) {
+            System.out.println(String.format("Completed in %d:%02d:%02d, or %d milliseconds", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart(), dur.toMillis()));
+        } else {
+            System.out.println(String.format("Completed in %d:%02d:%02d", dur.toHoursPart(), dur.toMinutesPart(), dur.toSecondsPart()));
+        }
+        // depth of 6 creates almost 6Mb
+        // 7 creates 9 999 999 ~10M ~70Mb
+        // 8 creates 100M=800Mb
+        // 9 creates 1000M=9Gb
+        // 10 creates 10,000M= 100Gb
+    }
+
+    protected void startCompute(int depth) throws IOException {
+        String fileName = "/tmp/suffix-combos-" + depth + ".txt";
+        int width = depth + 1;
+        int k = suffixDigits(depth);
+        byte[] block = renderSuffixBlock(depth, k);
+        long prefixes = Digits.pow10(depth - k);
+        int blocksPerBuffer = (int) Math.max(1, Math.min(prefixes, targetBufferBytes / block.length));
+        System.out.println(String.format("suffix block: k=%d, %d lines, %d bytes, %d prefixes, %d blocks per buffer",
+            k, block.length / width, block.length, prefixes, blocksPerBuffer));
+
+        // one buffer is always left for the writer, so filling can never wait on a buffer the writer holds.
+        int depthForSink = Math.max(2, asyncQueueDepth);
+        int bufferBytes = blocksPerBuffer * block.length;
+        ByteSink written;
+        try (ByteSink sink = outputChannel == null ? new AsyncFileSink(Paths.get(fileName), depthForSink, bufferBytes) : new ChannelSink(outputChannel, depthForSink, bufferBytes)) {
+            ArrayDeque<BufferFill> window = new ArrayDeque<>();
+            try {
+                for (long prefix = 0; prefix < prefixes; prefix += blocksPerBuffer) {
+                    if(window.size() == depthForSink - 1) {
+                        sink.submit(window.poll().finish());
+                    }
+                    BufferFill fill = new BufferFill(sink.acquire(), block, prefix, Math.min(prefixes, prefix + blocksPerBuffer), depth, k);
+                    commonPool.execute(fill);
+                    window.add(fill);
+                }
+                while (!window.isEmpty()) {
+                    sink.submit(window.poll().finish());
+                }
+            } catch (IOException | RuntimeException e) {
+                // stop the fills still ahead of the writer and hand their buffers back before the sink closes.
+                for (BufferFill fill : window) {
+                    fill.cancel(false);
+                    fill.quietlyJoin();
+                    sink.release(fill.buf);
+                }
+                throw e;
+            }
+            written = sink;
+        }
+        // close waited for the writes still in flight, so the stats are complete.
+        System.out.println(written.stats());
+        System.out.println(String.format("Generated %d combos, written to: %s", prefixes * (block.length / width), outputChannel == null ? fileName : "output stream"));
+    }
+
+    /**
+     * Largest k whose block of 10^k lines takes at most half the L2 cache, capped at depth. The block must also fit
+     * in one destination buffer and a byte[], whatever -Dcombos.l2Bytes says.
+     */
+    protected int suffixDigits(int depth) {
+        int width = depth + 1;
+        // targetBufferBytes is an int, so this also keeps the block within a byte[].
+        long maxBlockBytes = Math.min(l2Bytes / 2, targetBufferBytes);
+        int k = 1;
+        // compared as a line count, since 10^(k+1) * width overflows a long at depth 18.
+        while (k < depth && Digits.pow10(k + 1) <= maxBlockBytes / width) {
+            k++;
+        }
+        return Math.min(k, depth);
+    }
+
+    // Lines of the block carry '0' in the prefix positions; those get overwritten per prefix.
+    static byte[] renderSuffixBlock(int depth, int k) {
+        int width = depth + 1;
+        int lines = (int) Digits.pow10(k);
+        byte[] block = new byte[lines * width];
+        for (int line = 0; line < lines; line++) {
+            int offset = line * width;
+            int value = line;
+            for (int j = depth - 1; j >= 0; j--) {
+                block[offset + j] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            block[offset + depth] = '\n';
+        }
+        return block;
+    }
+
+    static long detectL2Bytes() {
+        Path cacheDir = Paths.get("/sys/devices/system/cpu/cpu0/cache");
+        for (int i = 0; i < 8; i++) {
+            Path index = cacheDir.resolve("index" + i);
+            try {
+                if(Files.readString(index.resolve("level")).trim().equals("2") && !Files.readString(index.resolve("type")).trim().equals("Instruction")) {
+                    String size = Files.readString(index.resolve("size")).trim();
+                    long multiplier = size.endsWith("K") ? 1024 : size.endsWith("M") ? 1024 * 1024 : 1;
+                    return Long.parseLong(size.replaceAll("[^0-9]", "")) * multiplier;
+                }
+            } catch (IOException | NumberFormatException e) {
+                // not linux, or no such cache level
+            }
+        }
+        return 256 * 1024;
+    }
+
+    /**
+     * Fills one sink buffer with the blocks of prefixes [from, to), splitting across the pool by prefix.
+     */
+    static class BufferFill extends RecursiveAction {
+        protected ByteBuffer buf;
+        protected byte[] block;
+        protected long from;
+        protected long to;
+        protected long bufferStart;
+        protected int depth;
+        protected int k;
+
+        public BufferFill(ByteBuffer buf, byte[] block, long from, long to, int depth, int k) {
+            this(buf, block, from, to, from, depth, k);
+        }
+
+        BufferFill(ByteBuffer buf, byte[] block, long from, long to, long bufferStart, int depth, int k) {
+            this.buf = buf;
+            this.block = block;
+            this.from = from;
+            this.to = to;
+            this.bufferStart = bufferStart;
+            this.depth = depth;
+            this.k = k;
+        }
+
+        /**
+         * Waits for the fill and returns the buffer positioned at the end of its data, ready for submit.
+         */
+        public ByteBuffer finish() {
+            join();
+            buf.position((int) (to - from) * block.length);
+            return buf;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                long mid = from + (to - from) / 2;
+                ForkJoinTask.invokeAll(new BufferFill(buf, block, from, mid, bufferStart, depth, k), new BufferFill(buf, block, mid, to, bufferStart, depth, k));
+                return;
+            }
+            int prefixLength = depth - k;
+            int width = depth + 1;
+            byte[] prefixBytes = new byte[prefixLength];
+            long value = from;
+            for (int j = prefixLength - 1; j >= 0; j--) {
+                prefixBytes[j] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            // absolute puts only, so sibling actions can fill other regions of the same buffer.
+            ByteBuffer region = buf.duplicate();
+            int start = (int) (from - bufferStart) * block.length;
+            region.position(start);
+            region.put(block);
+            if(prefixLength > 0) {
+                for (int offset = start; offset < start + block.length; offset += width) {
+                    for (int j = 0; j < prefixLength; j++) {
+                        region.put(offset + j, prefixBytes[j]);
+                    }
+                }
+            }
+        }
+    }
+}
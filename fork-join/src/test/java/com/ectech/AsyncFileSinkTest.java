@@ -0,0 +1,216 @@
+package com.ectech;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * AsyncFileSink against a fake channel that completes writes on another thread, so short writes and failures
+ * can be forced.
+ */
+public class AsyncFileSinkTest
+{
+    @Test(timeout = 10000)
+    public void shortWritesAreResumedAtTheirPosition() throws IOException {
+        FakeChannel channel = new FakeChannel(7, false);
+        byte[] expected = new byte[10 * 64];
+        try (AsyncFileSink sink = new AsyncFileSink(channel, 2, 64)) {
+            for (int b = 0; b < 10; b++) {
+                ByteBuffer buf = sink.acquire();
+                for (int i = 0; i < 64; i++) {
+                    byte value = (byte) (b * 64 + i);
+                    expected[b * 64 + i] = value;
+                    buf.put(value);
+                }
+                sink.submit(buf);
+            }
+            sink.close();
+            assertEquals(10, sink.writes.get());
+            assertEquals(expected.length, sink.bytesWritten.get());
+        }
+        assertArrayEquals(expected, Arrays.copyOf(channel.data, expected.length));
+    }
+
+    @Test(timeout = 10000)
+    public void failedWriteIsReportedAndCloseDoesNotHang() throws Exception {
+        FakeChannel channel = new FakeChannel(Integer.MAX_VALUE, true);
+        AsyncFileSink sink = new AsyncFileSink(channel, 2, 64);
+        ByteBuffer held = sink.acquire();
+        ByteBuffer first = sink.acquire();
+        first.put((byte) 1);
+        sink.submit(first);
+        while (sink.failure == null) {
+            Thread.sleep(1);
+        }
+        try {
+            sink.acquire();
+            fail("acquire should report the failed write");
+        } catch (IOException expected) {
+            // buffer went back to the free list
+        }
+        try {
+            sink.submit(held);
+            fail("submit should report the failed write");
+        } catch (IOException expected) {
+            // held buffer recycled
+        }
+        try {
+            sink.close();
+            fail("close should report the failed write");
+        } catch (IOException expected) {
+            // and it returned instead of waiting for buffers
+        }
+        assertEquals(2, sink.freeBuffers.size());
+    }
+
+    @Test(timeout = 10000)
+    public void closeDoesNotWaitForBuffersTheCallerHolds() throws IOException {
+        FakeChannel channel = new FakeChannel(Integer.MAX_VALUE, false);
+        try (AsyncFileSink sink = new AsyncFileSink(channel, 2, 64)) {
+            sink.acquire();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void deviceFullFailsInsteadOfHanging() throws IOException {
+        Path full = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.isWritable(full));
+        try (AsyncFileSink sink = new AsyncFileSink(full, 2, 4096)) {
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer buf = sink.acquire();
+                buf.put(new byte[4096]);
+                sink.submit(buf);
+            }
+            fail("writes to /dev/full should fail");
+        } catch (IOException expected) {
+            // ENOSPC surfaced from acquire, submit or close
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void priorityWriterFailingAfterTheEndMarkerDoesNotHang() throws IOException {
+        Path full = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.isWritable(full));
+        // depth 2 fits in one buffer, so the only write is the final submit after the end marker was taken.
+        Path output = Paths.get("/tmp/concurrent-combos-2.txt");
+        Files.deleteIfExists(output);
+        Files.createSymbolicLink(output, full);
+        PriorityWriterApp app = new PriorityWriterApp();
+        app.asyncQueueDepth = 2;
+        app.commonPool = new ForkJoinPool(2);
+        try {
+            app.startCompute(2);
+            fail("writes to /dev/full should fail");
+        } catch (IOException expected) {
+            // reported by startCompute once the writer thread gave up
+        } finally {
+            app.commonPool.shutdown();
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Writes at most maxChunk bytes per call, or fails every write, completing on a separate thread.
+     */
+    static class FakeChannel extends AsynchronousFileChannel {
+        byte[] data = new byte[4096];
+        int maxChunk;
+        boolean failWrites;
+        ExecutorService completions = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+
+        FakeChannel(int maxChunk, boolean failWrites) {
+            this.maxChunk = maxChunk;
+            this.failWrites = failWrites;
+        }
+
+        @Override
+        public <A> void write(ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            completions.execute(() -> {
+                if(failWrites) {
+                    handler.failed(new IOException("No space left on device"), attachment);
+                    return;
+                }
+                int n = Math.min(maxChunk, src.remaining());
+                synchronized (this) {
+                    src.get(data, (int) position, n);
+                }
+                handler.completed(n, attachment);
+            });
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public AsynchronousFileChannel truncate(long size) {
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) {
+        }
+
+        @Override
+        public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<FileLock> lock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> read(ByteBuffer dst, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> write(ByteBuffer src, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            completions.shutdown();
+        }
+    }
+}
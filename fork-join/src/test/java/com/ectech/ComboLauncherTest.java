@@ -0,0 +1,61 @@
+package com.ectech;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Option combinations the launcher must reject rather than silently run a different configuration.
+ */
+public class ComboLauncherTest
+{
+    @Test
+    public void acceptsOptionsTheEngineUses() {
+        ComboLauncher launcher = parse("--engine", "queue", "--queue-capacity", "50", "--depth", "5", "--warmup-depth", "3", "");
+        assertEquals(ComboLauncher.Engine.QUEUE, launcher.engine);
+        assertEquals(50, launcher.queueCapacity);
+        parse("--engine", "priority", "--sink", "async", "--async-queue-depth", "4");
+        parse("--engine", "suffix", "--async-queue-depth", "4", "--sink", "pipe", "--output", "/tmp/fifo");
+        parse("--engine", "partitioned", "--workers", "2", "--warmup-depth", "0");
+        // defaults of options the engine ignores are not an error.
+        parse("--engine", "inline", "--depth", "3");
+    }
+
+    @Test
+    public void rejectsOptionsTheEngineOrSinkWouldIgnore() {
+        rejects("--engine", "inline", "--queue-capacity", "50");
+        rejects("--engine", "suffix", "--queue-capacity", "50");
+        rejects("--engine", "partitioned", "--queue-capacity", "50");
+        rejects("--output", "/tmp/fifo");
+        rejects("--sink", "stdout", "--output", "/tmp/fifo");
+        rejects("--engine", "priority", "--async-queue-depth", "4");
+        rejects("--engine", "queue", "--async-queue-depth", "4");
+        rejects("--engine", "suffix", "--workers", "2");
+        rejects("--engine", "partitioned", "--warmup-depth", "3");
+        rejects("--depth", "4", "--warmup-depth", "4");
+        rejects("--engine", "inline", "--sink", "async");
+    }
+
+    @Test
+    public void rejectsOutOfRangeValues() {
+        rejects("--parallelism", "-1");
+        rejects("--depth", "19");
+        rejects("--engine", "suffix", "--async-queue-depth", "0");
+    }
+
+    static ComboLauncher parse(String... args) {
+        ComboLauncher launcher = new ComboLauncher();
+        launcher.parseArgs(args);
+        return launcher;
+    }
+
+    static void rejects(String... args) {
+        try {
+            parse(args);
+            fail("expected " + String.join(" ", args) + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // reported through the usage message and exit code 2 by main
+        }
+    }
+}
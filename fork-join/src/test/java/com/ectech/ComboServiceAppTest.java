@@ -0,0 +1,117 @@
+package com.ectech;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * The block cache accounting and range slicing of ComboServiceApp, without the HttpServer.
+ */
+public class ComboServiceAppTest
+{
+    @Test
+    public void storingPastTheBoundEvictsLeastRecentlyUsed() {
+        ComboServiceApp.BlockCache cache = new ComboServiceApp.BlockCache(100);
+        cache.store("a", new byte[40]);
+        cache.store("b", new byte[40]);
+        // touch a so b is the eldest.
+        cache.lookup("a");
+        cache.store("c", new byte[40]);
+        assertEquals(80, cache.currentBytes);
+        assertEquals(1, cache.evictions);
+        assertEquals(40, cache.evictedBytes);
+        assertEquals(List.of("a", "c"), List.copyOf(cache.keySet()));
+        assertNull(cache.lookup("b"));
+        assertEquals(1, cache.hits);
+        assertEquals(1, cache.misses);
+    }
+
+    @Test
+    public void replacingAKeyAccountsForTheDifference() {
+        ComboServiceApp.BlockCache cache = new ComboServiceApp.BlockCache(100);
+        cache.store("a", new byte[30]);
+        cache.store("b", new byte[30]);
+        byte[] wider = new byte[60];
+        cache.store("a", wider);
+        assertEquals(90, cache.currentBytes);
+        assertEquals(0, cache.evictions);
+        assertSame(wider, cache.lookup("a"));
+        // growing a again pushes b out, and only b.
+        cache.store("a", new byte[80]);
+        assertEquals(80, cache.currentBytes);
+        assertEquals(1, cache.evictions);
+        assertEquals(30, cache.evictedBytes);
+    }
+
+    @Test
+    public void blockLargerThanTheCacheIsNotKept() {
+        ComboServiceApp.BlockCache cache = new ComboServiceApp.BlockCache(100);
+        cache.store("a", new byte[50]);
+        cache.store("huge", new byte[150]);
+        assertEquals(0, cache.currentBytes);
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.evictions);
+        assertEquals(200, cache.evictedBytes);
+    }
+
+    @Test
+    public void renderBlockFillsNonContiguousWildcards() {
+        ComboServiceApp app = new ComboServiceApp();
+        ComboServiceApp.Pattern pattern = new ComboServiceApp.Pattern("1x2xx3");
+        byte[] block = app.renderBlock(pattern, 0);
+        assertArrayEquals(expected(pattern, 0, 1000), block);
+        assertEquals("102003\n", new String(block, 0, 7, StandardCharsets.US_ASCII));
+        assertEquals("192993\n", new String(block, 999 * 7, 7, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void rangeStartingAndEndingInsideBlocksIsSliced() throws IOException {
+        ComboServiceApp app = new ComboServiceApp();
+        app.cache = new ComboServiceApp.BlockCache(1 << 20);
+        app.commonPool = new ForkJoinPool(2);
+        ComboServiceApp.Pattern pattern = new ComboServiceApp.Pattern("x5xx0xx");
+        long[][] ranges = {
+            // first block partial, two full blocks, last block partial.
+            {4000, 3 * ComboServiceApp.BLOCK_LINES + 17},
+            // inside one block.
+            {5000, 5001},
+            // empty.
+            {7000, 7000},
+            // ends at the pattern's last line, which is inside the last block.
+            {pattern.count - 10, pattern.count},
+        };
+        try {
+            for (long[] range : ranges) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                app.streamRange(pattern, range[0], range[1], new AtomicBoolean(), body);
+                assertArrayEquals("range " + range[0] + "-" + range[1], expected(pattern, range[0], range[1]), body.toByteArray());
+            }
+        } finally {
+            app.commonPool.shutdown();
+        }
+    }
+
+    // combo n puts the digits of n, zero padded, into the wildcards from left to right.
+    static byte[] expected(ComboServiceApp.Pattern pattern, long from, long to) {
+        StringBuilder sb = new StringBuilder();
+        for (long n = from; n < to; n++) {
+            String digits = String.format("%0" + pattern.wildcards.length + "d", n);
+            int w = 0;
+            for (char c : pattern.text.toCharArray()) {
+                sb.append(c == 'x' ? digits.charAt(w++) : c);
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
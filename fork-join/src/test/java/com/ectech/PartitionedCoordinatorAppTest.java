@@ -0,0 +1,64 @@
+package com.ectech;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Two real worker JVMs on loopback, the first of which dies holding a lease, so reassignment and the restart
+ * path run on one box.
+ */
+public class PartitionedCoordinatorAppTest
+{
+    @Test(timeout = 120000)
+    public void crashedWorkersLeaseIsReassignedAndOutputIsComplete() throws IOException {
+        int depth = 3;
+        Path shardDir = Paths.get("/tmp/partitioned-combos-" + depth);
+        deleteRecursively(shardDir);
+        PartitionedCoordinatorApp app = new PartitionedCoordinatorApp();
+        app.workerCount = 2;
+        app.crashFirstWorkerAfter = 1;
+        app.startCompute(depth);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            expected.append(String.format("%03d\n", i));
+        }
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(Paths.get("/tmp/partitioned-combos-" + depth + ".txt")));
+
+        List<String> manifest = Files.readAllLines(shardDir.resolve("manifest.txt"));
+        assertEquals("depth=3 leases=100 output=/tmp/partitioned-combos-3.txt", manifest.get(0));
+        List<String> expectedLeases = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expectedLeases.add(String.format("shard-%05d.txt %d %d 10", i, i * 10, i * 10 + 10));
+        }
+        assertEquals(expectedLeases, manifest.subList(1, manifest.size()));
+
+        try (Stream<Path> files = Files.list(shardDir)) {
+            assertEquals(List.of(), files.map(f -> f.getFileName().toString()).filter(f -> f.contains(".part-")).collect(Collectors.toList()));
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if(!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(f);
+            }
+        }
+    }
+}
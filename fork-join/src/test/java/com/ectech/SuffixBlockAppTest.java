@@ -0,0 +1,58 @@
+package com.ectech;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * SuffixBlockApp streaming into memory through a ChannelSink, with the cache and buffer sizes shrunk so the
+ * prefix patching, several blocks per buffer and a partial last buffer all happen at a small depth.
+ */
+public class SuffixBlockAppTest
+{
+    @Test(timeout = 30000)
+    public void patchedBlocksMatchTheNaiveEnumeration() throws IOException {
+        int depth = 5;
+        int width = depth + 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SuffixBlockApp app = new SuffixBlockApp();
+        // a 100 line block (600 bytes) is the largest within half of 1200, so k = 2 and there are 1000 prefixes.
+        app.l2Bytes = 1200;
+        // 7 blocks per buffer; 1000 prefixes leave 6 blocks for the last one.
+        app.targetBufferBytes = 7 * 100 * width;
+        app.asyncQueueDepth = 3;
+        app.commonPool = new ForkJoinPool(2);
+        app.outputChannel = Channels.newChannel(out);
+        try {
+            assertEquals(2, app.suffixDigits(depth));
+            app.startCompute(depth);
+        } finally {
+            app.commonPool.shutdown();
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            expected.append(String.format("%05d\n", i));
+        }
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.US_ASCII), out.toByteArray());
+    }
+
+    @Test
+    public void hugeL2OverrideIsCappedToTheBuffer() {
+        SuffixBlockApp app = new SuffixBlockApp();
+        app.l2Bytes = Long.MAX_VALUE;
+        for (int depth = 1; depth <= Digits.MAX_DEPTH; depth++) {
+            int k = app.suffixDigits(depth);
+            assertTrue(k >= 1 && k <= depth);
+            assertTrue(Digits.pow10(k) * (depth + 1) <= app.targetBufferBytes);
+        }
+    }
+}